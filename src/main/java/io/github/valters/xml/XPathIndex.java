@@ -0,0 +1,270 @@
+/*
+  This file is licensed to You under the Apache License, Version 2.0
+  (the "License"); you may not use this file except in compliance with
+  the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package io.github.valters.xml;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Lookup index for answering simple XPath expressions against one {@link Document} without re-scanning the whole tree every time.
+ * <p>
+ * Holds element name to elements and attribute value to elements maps, both filled in a single document-order pass on first use.
+ * The index is attached to the document itself (see {@link Document#setUserData(String, Object, org.w3c.dom.UserDataHandler)}), so it lives exactly as long
+ * as the document does. It is kept in a transient field of a small holder, so a serialized document does not carry it along and is re-indexed on first use
+ * after deserialization. The index is not updated when the document changes: call {@link #invalidate(Document)} after modifying the tree.
+ * <p>
+ * Only expressions of form <code>//name</code>, <code>//name[@attr='value']</code> and <code>//*[@attr='value']</code> with unprefixed names are
+ * answered from the index, see {@link #isIndexable(String)}. Documents built without namespace support that use prefixed names can not be
+ * answered from the index at all, see {@link #matchesXPath()}.
+ *
+ * @author vvingolds
+ */
+public class XPathIndex {
+
+    /** key under which the index is stored as document user data */
+    private static final String USER_DATA_KEY = XPathIndex.class.getName();
+
+    /** guards attaching and dropping the index, rather than locking on the caller's document */
+    private static final Object LOCK = new Object();
+
+    /** XPath "any element" name test */
+    private static final String ANY_ELEMENT = "*";
+
+    /** <code>//name</code> or <code>//name[@attr='value']</code>: group 1 is element name (or "*"), group 2 attribute name, group 3 or 4 attribute value */
+    private static final Pattern SIMPLE_EXPR = Pattern.compile(
+            "//([A-Za-z_][A-Za-z0-9_.-]*|\\*)(?:\\[@([A-Za-z_][A-Za-z0-9_.-]*)=(?:'([^']*)'|\"([^\"]*)\")\\])?" );
+
+    /** document user data value. Some DOM implementations (Xerces) serialize user data with the document, so keep the index itself out of it */
+    private static final class Holder implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient XPathIndex index;
+    }
+
+    private final Document doc;
+
+    private Map<String, List<Element>> elementsByName;
+
+    private Map<String, Map<String, List<Element>>> elementsByAttribute;
+
+    /** document has prefixed DOM level 1 nodes, which XPath resolves in its own way */
+    private boolean hasPrefixedLevel1Names;
+
+    private XPathIndex( final Document doc ) {
+        this.doc = doc;
+    }
+
+    /** Get the index attached to the document, creating an empty one if there is none yet. The actual tree scan happens on the first lookup.
+     * @param doc XML document
+     * @return index for the document
+     */
+    public static XPathIndex forDocument( final Document doc ) {
+        synchronized( LOCK ) {
+            Holder holder = (Holder) doc.getUserData( USER_DATA_KEY );
+            if( holder == null ) {
+                holder = new Holder();
+                doc.setUserData( USER_DATA_KEY, holder, null );
+            }
+            if( holder.index == null ) {
+                holder.index = new XPathIndex( doc );
+            }
+            return holder.index;
+        }
+    }
+
+    /** Drop the index attached to the document, if any. Must be called after the document has been modified, otherwise lookups will return stale results.
+     * @param doc XML document
+     */
+    public static void invalidate( final Document doc ) {
+        synchronized( LOCK ) {
+            doc.setUserData( USER_DATA_KEY, null, null );
+        }
+    }
+
+    /** Check if the expression is simple enough to be answered by {@link #findNode(String)}.
+     * @param xpathExpr XPath expression
+     * @return true if expression is of form <code>//name</code>, <code>//name[@attr='value']</code> or <code>//*[@attr='value']</code>
+     */
+    public static boolean isIndexable( final String xpathExpr ) {
+        return SIMPLE_EXPR.matcher( xpathExpr ).matches();
+    }
+
+    /** Check if index lookups give the same results as XPath for this document. They do not when the document was built without namespace support
+     * (DOM level 1 nodes, e.g. from a non namespace aware parser) and has prefixed element or attribute names: XPath resolves those prefixes itself.
+     * @return true if {@link #findNode(String)} can be used
+     */
+    public boolean matchesXPath() {
+        index();
+        return !hasPrefixedLevel1Names;
+    }
+
+    /**
+     * Answer a simple XPath expression from the index.
+     * @param xpathExpr node to find, must be {@link #isIndexable(String)}
+     * @return first matching element in document order, or null if none
+     * @throws IllegalStateException if index does not {@link #matchesXPath()} for this document
+     */
+    public Node findNode( final String xpathExpr ) {
+        final Matcher m = SIMPLE_EXPR.matcher( xpathExpr );
+        if( !m.matches() ) {
+            throw new IllegalArgumentException( "Expression can not be answered from index: [" + xpathExpr + "]" );
+        }
+        if( !matchesXPath() ) {
+            throw new IllegalStateException( "Document has prefixed names without namespace support, use XPath instead: [" + xpathExpr + "]" );
+        }
+
+        final String name = m.group( 1 );
+        final String attrName = m.group( 2 );
+        if( attrName == null ) {
+            return first( elementsByName( name ) );
+        }
+
+        final String attrValue = m.group( 3 ) != null ? m.group( 3 ) : m.group( 4 );
+        final List<Element> elements = elementsByAttribute( attrName, attrValue );
+        if( ANY_ELEMENT.equals( name ) ) {
+            return first( elements );
+        }
+        for( final Element element : elements ) {
+            if( element.getNamespaceURI() == null && name.equals( localName( element ) ) ) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /** Get elements with given local name and no namespace, as <code>//name</code> would select them.
+     * @param name element name, or "*" for all elements
+     * @return elements in document order, never null
+     */
+    public List<Element> elementsByName( final String name ) {
+        final List<Element> elements = index().get( name );
+        return elements != null ? Collections.unmodifiableList( elements ) : Collections.<Element>emptyList();
+    }
+
+    /** Get elements carrying attribute (without namespace) with given value, as <code>//*[@attr='value']</code> would select them.
+     * @param attrName attribute name
+     * @param attrValue attribute value
+     * @return elements in document order, never null
+     */
+    public List<Element> elementsByAttribute( final String attrName, final String attrValue ) {
+        index();
+        final Map<String, List<Element>> byValue = elementsByAttribute.get( attrName );
+        if( byValue == null ) {
+            return Collections.<Element>emptyList();
+        }
+        final List<Element> elements = byValue.get( attrValue );
+        return elements != null ? Collections.unmodifiableList( elements ) : Collections.<Element>emptyList();
+    }
+
+    /** build both maps on first use */
+    private synchronized Map<String, List<Element>> index() {
+        if( elementsByName == null ) {
+            final Map<String, List<Element>> byName = new HashMap<String, List<Element>>();
+            elementsByAttribute = new HashMap<String, Map<String, List<Element>>>();
+            indexTree( doc.getDocumentElement(), byName );
+            elementsByName = byName;
+        }
+        return elementsByName;
+    }
+
+    /** walk the tree in document order without recursion, so deeply nested documents do not overflow the stack */
+    private void indexTree( final Node root, final Map<String, List<Element>> byName ) {
+        Node node = root;
+        while( node != null ) {
+            if( node.getNodeType() == Node.ELEMENT_NODE ) {
+                final Element element = (Element) node;
+                checkLevel1Prefix( element );
+                add( byName, ANY_ELEMENT, element );
+                if( element.getNamespaceURI() == null ) {
+                    add( byName, localName( element ), element );
+                }
+                indexAttributes( element );
+            }
+
+            if( node.getFirstChild() != null ) {
+                node = node.getFirstChild();
+                continue;
+            }
+            while( node != root && node.getNextSibling() == null ) {
+                node = node.getParentNode();
+            }
+            node = node == root ? null : node.getNextSibling();
+        }
+    }
+
+    private void indexAttributes( final Element element ) {
+        final NamedNodeMap attrs = element.getAttributes();
+        for( int i = 0; i < attrs.getLength(); i++ ) {
+            final Node attr = attrs.item( i );
+            if( attr.getNamespaceURI() != null || isNamespaceDeclaration( attr ) ) {
+                continue; // only plain attributes are reachable by unprefixed @attr
+            }
+            checkLevel1Prefix( attr );
+
+            final String attrName = localName( attr );
+            Map<String, List<Element>> byValue = elementsByAttribute.get( attrName );
+            if( byValue == null ) {
+                byValue = new HashMap<String, List<Element>>();
+                elementsByAttribute.put( attrName, byValue );
+            }
+            add( byValue, attr.getNodeValue(), element );
+        }
+    }
+
+    /** namespace declarations are not attributes as far as XPath is concerned (non namespace aware parser reports them without a namespace) */
+    private static boolean isNamespaceDeclaration( final Node attr ) {
+        final String nodeName = attr.getNodeName();
+        return XMLConstants.XMLNS_ATTRIBUTE.equals( nodeName ) || nodeName.startsWith( XMLConstants.XMLNS_ATTRIBUTE + ':' );
+    }
+
+    private void checkLevel1Prefix( final Node node ) {
+        if( node.getLocalName() == null && node.getNodeName().indexOf( ':' ) >= 0 ) {
+            hasPrefixedLevel1Names = true;
+        }
+    }
+
+    /** DOM level 1 nodes (non namespace aware parser) have no local name */
+    private static String localName( final Node node ) {
+        final String localName = node.getLocalName();
+        return localName != null ? localName : node.getNodeName();
+    }
+
+    private static void add( final Map<String, List<Element>> map, final String key, final Element element ) {
+        List<Element> elements = map.get( key );
+        if( elements == null ) {
+            elements = new ArrayList<Element>();
+            map.put( key, elements );
+        }
+        elements.add( element );
+    }
+
+    private static Element first( final List<Element> elements ) {
+        return elements.isEmpty() ? null : elements.get( 0 );
+    }
+
+}
@@ -51,10 +51,7 @@ public class XPathUtils {
     public static Node findNode( final XPath xpath, final Document doc, final String xpathExpr ) {
         try {
             final Node node = (Node) xpath.evaluate( xpathExpr, doc, XPathConstants.NODE );
-            if( node == null ) {
-                System.out.println( "Failed to get node: [" + xpathExpr + "] from [" + doc + "]" );
-            }
-            return node;
+            return reportNotFound( node, doc, xpathExpr );
         }
         catch( final XPathExpressionException e ) {
             throw new RuntimeException( "Failed to get node: [" + xpathExpr + "]", e );
@@ -71,4 +68,47 @@ public class XPathUtils {
         return findNode( xpath, doc, xpathExpr );
     }
 
+    /**
+     * Same as {@link #findNode(XPath, Document, String)}, but simple expressions (<code>//name</code>, <code>//name[@attr='value']</code>, <code>//*[@attr='value']</code>)
+     * are answered from the {@link XPathIndex} attached to the document instead of scanning the whole tree. Useful when doing many lookups on one large document.
+     * Call {@link XPathIndex#invalidate(Document)} after modifying the document.
+     * @param xpath XPath object, used for expressions that can not be answered from index
+     * @param doc XML document
+     * @param xpathExpr node to find
+     * @return result node
+     */
+    public static Node findIndexedNode( final XPath xpath, final Document doc, final String xpathExpr ) {
+        if( !XPathIndex.isIndexable( xpathExpr ) ) {
+            return findNode( xpath, doc, xpathExpr );
+        }
+
+        final XPathIndex index = XPathIndex.forDocument( doc );
+        if( !index.matchesXPath() ) {
+            return findNode( xpath, doc, xpathExpr );
+        }
+
+        final Node node = index.findNode( xpathExpr );
+        return reportNotFound( node, doc, xpathExpr );
+    }
+
+    /**
+     * Apply Xpath expression to find child node in given document, using {@link XPathIndex} where possible. This uses local {@link #xpath} instance.
+     * @param doc XML document
+     * @param xpathExpr node to find
+     * @return result node
+     */
+    public Node findIndexedNode( final Document doc, final String xpathExpr ) {
+        return findIndexedNode( xpath, doc, xpathExpr );
+    }
+
+    /** complain if lookup came up empty
+     * @return the node, unchanged
+     */
+    private static Node reportNotFound( final Node node, final Document doc, final String xpathExpr ) {
+        if( node == null ) {
+            System.out.println( "Failed to get node: [" + xpathExpr + "] from [" + doc + "]" );
+        }
+        return node;
+    }
+
 }
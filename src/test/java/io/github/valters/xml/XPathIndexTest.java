@@ -0,0 +1,127 @@
+package io.github.valters.xml;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+public class XPathIndexTest {
+
+    private final XPathUtils xpath = new XPathUtils();
+
+    @Test
+    public void shouldRecognizeSimpleExpressions() {
+        assertThat( XPathIndex.isIndexable( "//item" ), is( true ) );
+        assertThat( XPathIndex.isIndexable( "//item[@id='a1']" ), is( true ) );
+        assertThat( XPathIndex.isIndexable( "//*[@id=\"a1\"]" ), is( true ) );
+        assertThat( XPathIndex.isIndexable( "/catalog/item" ), is( false ) );
+        assertThat( XPathIndex.isIndexable( "//x:item" ), is( false ) );
+        assertThat( XPathIndex.isIndexable( "//item[1]" ), is( false ) );
+    }
+
+    @Test
+    public void shouldMatchXPathResults() throws Exception {
+        assertSameAsXPath( parseTestDoc() );
+    }
+
+    @Test
+    public void shouldMatchXPathResultsWithoutNamespaceSupport() throws Exception {
+        final Document doc = parseWithoutNamespaces( "test/index.xml" );
+        assertThat( XPathIndex.forDocument( doc ).matchesXPath(), is( false ) );
+        assertSameAsXPath( doc );
+
+        final Document unprefixed = parseWithoutNamespaces( "test/test.xml" );
+        assertThat( XPathIndex.forDocument( unprefixed ).matchesXPath(), is( true ) );
+        for( final String expr : new String[] { "//diff", "//br", "//*", "//missing" } ) {
+            assertThat( expr, xpath.findIndexedNode( unprefixed, expr ), sameInstance( xpath.findNode( unprefixed, expr ) ) );
+        }
+    }
+
+    private void assertSameAsXPath( final Document doc ) {
+        for( final String expr : new String[] { "//item", "//title", "//item[@id='a2']", "//*[@kind='book']", "//note[@kind='book']",
+                "//*[@id='x1']", "//*[@id='e1']", "//item[@id='n1']", "//missing", "//entry[@id='e1']", "//*",
+                "//item[@id='x1']", "//item[@id='d1']", "//*[@id='d1']" } ) {
+            assertThat( expr, xpath.findIndexedNode( doc, expr ), sameInstance( xpath.findNode( doc, expr ) ) );
+        }
+    }
+
+    @Test
+    public void shouldReuseIndexUntilInvalidated() throws Exception {
+        final Document doc = parseTestDoc();
+        final XPathIndex index = XPathIndex.forDocument( doc );
+        assertThat( XPathIndex.forDocument( doc ), sameInstance( index ) );
+        assertThat( index.elementsByName( "item" ).size(), is( 2 ) );
+
+        final Element item = doc.createElement( "item" );
+        item.setAttribute( "id", "a3" );
+        doc.getDocumentElement().appendChild( item );
+        assertThat( xpath.findIndexedNode( doc, "//item[@id='a3']" ), nullValue() );
+        assertThat( XPathIndex.forDocument( doc ).elementsByName( "item" ).size(), is( 2 ) );
+
+        XPathIndex.invalidate( doc );
+        assertThat( xpath.findIndexedNode( doc, "//item[@id='a3']" ), sameInstance( (Node) item ) );
+        assertThat( XPathIndex.forDocument( doc ).elementsByName( "item" ).size(), is( 3 ) );
+    }
+
+    @Test
+    public void shouldIndexDeeplyNestedDocument() throws Exception {
+        final Document doc = XmlDomUtils.documentBuilder().newDocument();
+        Element deepest = doc.createElement( "level" );
+        doc.appendChild( deepest );
+        for( int i = 0; i < 20000; i++ ) {
+            deepest = (Element) deepest.appendChild( doc.createElement( "level" ) );
+        }
+        deepest.setAttribute( "id", "bottom" );
+
+        assertThat( xpath.findIndexedNode( doc, "//level[@id='bottom']" ), sameInstance( (Node) deepest ) );
+        assertThat( XPathIndex.forDocument( doc ).elementsByName( "level" ).size(), is( 20001 ) );
+    }
+
+    @Test
+    public void shouldKeepIndexedDocumentSerializable() throws Exception {
+        final Document doc = parseTestDoc();
+        assertThat( xpath.findIndexedNode( doc, "//item[@id='a2']" ), sameInstance( xpath.findNode( doc, "//item[@id='a2']" ) ) );
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try( ObjectOutputStream out = new ObjectOutputStream( bytes ) ) {
+            out.writeObject( doc );
+        }
+        try( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) ) {
+            final Document copy = (Document) in.readObject();
+            assertThat( xpath.findIndexedNode( copy, "//item[@id='a2']" ), sameInstance( xpath.findNode( copy, "//item[@id='a2']" ) ) );
+            assertThat( XPathIndex.forDocument( copy ).elementsByName( "item" ).size(), is( 2 ) );
+        }
+    }
+
+    private Document parseTestDoc() throws SAXException, IOException, ParserConfigurationException {
+        try( InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream( "test/index.xml" ) ) {
+            return XmlDomUtils.documentBuilder().parse( is );
+        }
+    }
+
+    /** DOM level 1 parse: {@link XmlDomUtils#documentBuilder()} is always namespace aware */
+    private Document parseWithoutNamespaces( final String resource ) throws SAXException, IOException, ParserConfigurationException {
+        final DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
+        dbfac.setNamespaceAware( false );
+        try( InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream( resource ) ) {
+            return dbfac.newDocumentBuilder().parse( is );
+        }
+    }
+
+}